@@ -19,16 +19,27 @@ package de.dakror.gravityrun;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
 import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
+import java.util.Iterator;
 
 import javax.imageio.ImageIO;
 import javax.swing.JFrame;
 
 import de.dakror.gravityrun.game.Game;
+import de.dakror.gravityrun.game.Minimap;
 import de.dakror.gravityrun.layer.LayerManager;
 import de.dakror.gravityrun.ui.Drawable;
+import de.dakror.gravityrun.ui.StatsOverlay;
+import de.dakror.gravityrun.util.MemoryGovernor;
 
 /**
  * @author Maximilian Stark | Dakror
@@ -38,6 +49,62 @@ public class GravityRun extends JFrame implements Drawable {
 	public static GravityRun instance;
 	
 	static HashMap<String, BufferedImage> imageCache = new HashMap<>();
+	static long imageCacheBytes;
+	
+	/**
+	 * Images released by the {@link MemoryGovernor}. Only weakly held, so the ones still in use elsewhere are handed out again instead of loading a
+	 * duplicate.
+	 */
+	static HashMap<String, WeakReference<BufferedImage>> releasedImages = new HashMap<>();
+	
+	/**
+	 * Reports the image cache to the {@link MemoryGovernor}. Released images stay counted until the garbage collector actually took them.
+	 */
+	static final MemoryGovernor.Subsystem imageCacheSubsystem = new MemoryGovernor.Subsystem() {
+		@Override
+		public String getName() {
+			return "Image cache";
+		}
+		
+		@Override
+		public long getMemoryUsage() {
+			long bytes = imageCacheBytes;
+			for (Iterator<WeakReference<BufferedImage>> iter = releasedImages.values().iterator(); iter.hasNext();) {
+				BufferedImage img = iter.next().get();
+				if (img == null) iter.remove();
+				else bytes += sizeOf(img);
+			}
+			
+			return bytes;
+		}
+		
+		@Override
+		public int getReleaseCost() {
+			return 10;
+		}
+		
+		/**
+		 * Only demotes the cached images to weak references, whatever is unused goes with the next garbage collection.
+		 * 
+		 * @return always 0, as nothing is freed right away
+		 */
+		@Override
+		public long release(long bytes) {
+			for (String p : imageCache.keySet())
+				if (imageCache.get(p) != null) releasedImages.put(p, new WeakReference<>(imageCache.get(p)));
+			
+			imageCache.clear();
+			imageCacheBytes = 0;
+			return 0;
+		}
+	};
+	
+	/**
+	 * Cached, since {@link #getInsets()} creates a new object on every call
+	 */
+	Insets insets;
+	
+	StatsOverlay statsOverlay;
 	
 	public GravityRun() {
 		super("GravityRun");
@@ -48,11 +115,34 @@ public class GravityRun extends JFrame implements Drawable {
 		setLocationRelativeTo(null);
 		setVisible(true);
 		
+		insets = getInsets();
+		addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				insets = getInsets();
+			}
+		});
+		
+		statsOverlay = new StatsOverlay(10, 140);
+		addKeyListener(new KeyAdapter() {
+			@Override
+			public void keyPressed(KeyEvent e) {
+				if (e.getKeyCode() == KeyEvent.VK_F3) statsOverlay.toggle();
+			}
+		});
+		
 		setBackground(Color.black);
 		
 		createBufferStrategy(2);
 		
-		LayerManager.instance.addLayer(new Game());
+		MemoryGovernor.instance.register(imageCacheSubsystem);
+		
+		Game game = new Game();
+		LayerManager.instance.addLayer(game);
+		Minimap minimap = new Minimap(game.getBlocks(), 10, 10, 160, 120);
+		game.setMinimap(minimap);
+		LayerManager.instance.addLayer(minimap);
+		LayerManager.instance.addLayer(statsOverlay);
 		mainLoop();
 	}
 	
@@ -62,10 +152,12 @@ public class GravityRun extends JFrame implements Drawable {
 		
 		while (true) {
 			BufferStrategy bs = getBufferStrategy();
-			g = (Graphics2D) bs.getDrawGraphics();
-			g.translate(getInsets().left, getInsets().top);
+			g = (Graphics2D) bs.getDrawGraphics(); // the only allocation left per frame, AWT hands out a new Graphics every time
+			g.translate(insets.left, insets.top);
 			
-			update((System.currentTimeMillis() - last) / 1_000f);
+			long now = System.currentTimeMillis();
+			update((now - last) / 1_000f);
+			last = now;
 			
 			g.clearRect(0, 0, innerWidth(), innerHeight());
 			draw(g);
@@ -83,18 +175,21 @@ public class GravityRun extends JFrame implements Drawable {
 	
 	@Override
 	public void update(float deltaTime) {
+		MemoryGovernor.instance.update(deltaTime);
 		LayerManager.instance.update(deltaTime);
 	}
 	
 	public int innerWidth() {
-		return getWidth() - (getInsets().left + getInsets().right);
+		return getWidth() - (insets.left + insets.right);
 	}
 	
 	public int innerHeight() {
-		return getHeight() - (getInsets().top + getInsets().bottom);
+		return getHeight() - (insets.top + insets.bottom);
 	}
 	
-	public BufferedImage loadImage(String p) {
+	// -- statics -- //
+	
+	public static BufferedImage loadImage(String p) {
 		try {
 			BufferedImage i = ImageIO.read(GravityRun.class.getResource((p.startsWith("/") ? "" : "/assets/") + p));
 			
@@ -104,8 +199,6 @@ public class GravityRun extends JFrame implements Drawable {
 		}
 	}
 	
-	// -- statics -- //
-	
 	public static int width() {
 		return instance.innerWidth();
 	}
@@ -116,11 +209,21 @@ public class GravityRun extends JFrame implements Drawable {
 	
 	public static BufferedImage getImage(String p) {
 		if (imageCache.containsKey(p)) return imageCache.get(p);
-		BufferedImage img = instance.loadImage(p);
+		
+		WeakReference<BufferedImage> released = releasedImages.remove(p);
+		BufferedImage img = released != null ? released.get() : null;
+		if (img == null) img = loadImage(p);
+		
 		imageCache.put(p, img);
+		if (img != null) imageCacheBytes += sizeOf(img);
 		return img;
 	}
 	
+	static long sizeOf(BufferedImage img) {
+		DataBuffer db = img.getRaster().getDataBuffer();
+		return (long) db.getSize() * db.getNumBanks() * DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+	}
+	
 	public static void main(String[] args) {
 		new GravityRun();
 	}
@@ -17,34 +17,187 @@
 
 package de.dakror.gravityrun.game;
 
+import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import de.dakror.gravityrun.GravityRun;
 import de.dakror.gravityrun.game.tile.Block;
 import de.dakror.gravityrun.layer.Layer;
+import de.dakror.gravityrun.net.Ghost;
+import de.dakror.gravityrun.net.GhostClient;
+import de.dakror.gravityrun.util.D;
+import de.dakror.gravityrun.util.MemoryGovernor;
 
 /**
  * Central class for the actual game.
  * 
  * @author Maximilian Stark | Dakror
  */
-public class Game implements Layer {
-	Block block;
+public class Game implements Layer, MemoryGovernor.Subsystem {
+	/**
+	 * How many ghosts to race against at once
+	 */
+	public static final int GHOST_COUNT = 10;
+	public static final Color GHOST_COLOR = new Color(255, 255, 255, 96);
+	
+	/**
+	 * Filling translucent rects allocates a mask every call, drawing an image doesn't.
+	 */
+	static final BufferedImage GHOST_SPRITE = createGhostSprite();
+	
+	ArrayList<Block> blocks = new ArrayList<>();
+	
+	/**
+	 * Its level of detail is kept when releasing batches
+	 */
+	Minimap minimap;
+	
+	ArrayList<Ghost> ghosts = new ArrayList<>();
+	CompletableFuture<List<Ghost>> ghostRequest;
+	
+	/**
+	 * Seconds since the start of the race
+	 */
+	float raceTime;
 	
 	@Override
 	public void draw(Graphics2D g) {
-		g.drawImage(block.getBatch(), (int) block.getX(), (int) block.getY(), null);
+		for (int i = 0; i < blocks.size(); i++) {
+			Block b = blocks.get(i);
+			
+			// off screen blocks would render their released batches again right away
+			if (!isOnScreen(b)) continue;
+			
+			g.drawImage(b.getBatch(), (int) b.getX(), (int) b.getY(), null);
+		}
+		
+		for (int i = 0; i < ghosts.size(); i++) {
+			Ghost gh = ghosts.get(i);
+			g.drawImage(GHOST_SPRITE, (int) gh.getX(), (int) gh.getY(), null);
+		}
 	}
 	
 	@Override
-	public void update(float deltaTime) {}
+	public void update(float deltaTime) {
+		raceTime += deltaTime;
+		
+		if (ghostRequest != null && ghostRequest.isDone()) {
+			if (ghostRequest.isCompletedExceptionally()) D.p("Could not load ghosts!");
+			else ghosts.addAll(ghostRequest.join());
+			ghostRequest = null;
+		}
+		
+		float tick = raceTime * Ghost.TICK_RATE;
+		for (int i = 0; i < ghosts.size(); i++)
+			ghosts.get(i).seek(tick);
+	}
+	
+	/**
+	 * Restarts the race clock and loads the fastest ghosts for the seed in the background.
+	 */
+	public void race(GhostClient client, long seed) {
+		ghosts.clear();
+		raceTime = 0;
+		ghostRequest = client.fetch(seed, GHOST_COUNT);
+	}
 	
 	@Override
 	public void enter() {
-		block = new Block();
+		Block block = new Block();
 		block.load(GravityRun.getImage("tiles/flat.png"));
+		blocks.add(block);
+		
+		MemoryGovernor.instance.register(this);
 	}
 	
 	@Override
-	public void exit() {}
+	public void exit() {
+		MemoryGovernor.instance.unregister(this);
+	}
+	
+	@Override
+	public String getName() {
+		return "Block batches";
+	}
+	
+	@Override
+	public long getMemoryUsage() {
+		long bytes = 0;
+		for (int i = 0; i < blocks.size(); i++)
+			bytes += blocks.get(i).getMemoryUsage();
+		
+		return bytes;
+	}
+	
+	/**
+	 * Batches are rendered from the tiles in no time
+	 */
+	@Override
+	public int getReleaseCost() {
+		return 0;
+	}
+	
+	/**
+	 * Drops the batches of the off screen blocks farthest from the center of the screen first.<br>
+	 * Visible blocks would just render them again on the next frame, and the level the minimap draws from is kept for the same reason.
+	 * 
+	 * @return what was actually freed, possibly less than asked for
+	 */
+	@Override
+	public long release(long bytes) {
+		float cx = GravityRun.instance == null ? 0 : GravityRun.width() / 2f;
+		float cy = GravityRun.instance == null ? 0 : GravityRun.height() / 2f;
+		float half = Block.TILE_COUNT * Block.TILE_SIZE / 2f;
+		int keepLevel = minimap == null ? -2 : Block.getLevelOfDetail(minimap.getScale());
+		
+		ArrayList<Block> sorted = new ArrayList<>();
+		for (int i = 0; i < blocks.size(); i++)
+			if (!isOnScreen(blocks.get(i))) sorted.add(blocks.get(i));
+		
+		sorted.sort(Comparator.comparingDouble(b -> -Math.hypot(b.getX() + half - cx, b.getY() + half - cy)));
+		
+		long freed = 0;
+		for (int i = 0; i < sorted.size() && freed < bytes; i++)
+			freed += sorted.get(i).releaseBatches(keepLevel);
+		
+		return freed;
+	}
+	
+	/**
+	 * Without a window everything counts as on screen.
+	 */
+	public boolean isOnScreen(Block b) {
+		if (GravityRun.instance == null) return true;
+		
+		int size = Block.TILE_COUNT * Block.TILE_SIZE;
+		return b.getX() + size >= 0 && b.getY() + size >= 0 && b.getX() <= GravityRun.width() && b.getY() <= GravityRun.height();
+	}
+	
+	/**
+	 * @param minimap the minimap showing this game's blocks, or null
+	 */
+	public void setMinimap(Minimap minimap) {
+		this.minimap = minimap;
+	}
+	
+	/**
+	 * @return the live list of all blocks in the game
+	 */
+	public ArrayList<Block> getBlocks() {
+		return blocks;
+	}
+	
+	static BufferedImage createGhostSprite() {
+		BufferedImage img = new BufferedImage(Block.TILE_SIZE, Block.TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = img.createGraphics();
+		g.setColor(GHOST_COLOR);
+		g.fillRect(0, 0, Block.TILE_SIZE, Block.TILE_SIZE);
+		g.dispose();
+		return img;
+	}
 }
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.game;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import de.dakror.gravityrun.game.tile.Block;
+import de.dakror.gravityrun.layer.Layer;
+import de.dakror.gravityrun.util.Palette;
+
+/**
+ * Overview of the whole world, drawn from the downsampled block batches.
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+public class Minimap implements Layer {
+	/**
+	 * At most one pixel per tile, so a small world doesn't get blown up
+	 */
+	public static final float MAX_SCALE = 1f / Block.TILE_SIZE;
+	
+	List<Block> blocks;
+	
+	int x, y, width, height;
+	
+	/**
+	 * Fits the whole world into the minimap, updated every frame
+	 */
+	float scale, worldX, worldY;
+	
+	/**
+	 * Combined block count and versions the cache was rendered with
+	 */
+	int stamp;
+	
+	BufferedImage cache;
+	
+	/**
+	 * @param blocks the blocks to be shown, usually {@link Game#getBlocks()}
+	 */
+	public Minimap(List<Block> blocks, int x, int y, int width, int height) {
+		this.blocks = blocks;
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		
+		cache = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+	}
+	
+	@Override
+	public void draw(Graphics2D g) {
+		g.drawImage(cache, x, y, null);
+		
+		g.setColor(Color.white);
+		g.drawRect(x, y, width, height);
+	}
+	
+	@Override
+	public void update(float deltaTime) {
+		if (blocks.isEmpty()) return;
+		
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		int stamp = blocks.size();
+		for (int i = 0; i < blocks.size(); i++) {
+			Block b = blocks.get(i);
+			minX = Math.min(minX, b.getX());
+			minY = Math.min(minY, b.getY());
+			maxX = Math.max(maxX, b.getX());
+			maxY = Math.max(maxY, b.getY());
+			stamp = 31 * stamp + b.getVersion();
+		}
+		
+		int size = Block.TILE_COUNT * Block.TILE_SIZE;
+		float s = Math.min(MAX_SCALE, Math.min(width / (maxX + size - minX), height / (maxY + size - minY)));
+		
+		if (s != scale || minX != worldX || minY != worldY || stamp != this.stamp) {
+			scale = s;
+			worldX = minX;
+			worldY = minY;
+			this.stamp = stamp;
+			render();
+		}
+	}
+	
+	/**
+	 * Redraws the cache. Scaled image drawing allocates, so it's only done when something changed.
+	 */
+	void render() {
+		Graphics2D g = cache.createGraphics();
+		g.setBackground(Palette.TRANSPARENT_RGBA);
+		g.clearRect(0, 0, width, height);
+		
+		int size = Block.TILE_COUNT * Block.TILE_SIZE;
+		
+		for (int i = 0; i < blocks.size(); i++) {
+			Block b = blocks.get(i);
+			if (!b.isInitialized()) continue;
+			
+			// both edges get rounded the same way, so neighbouring blocks don't leave gaps
+			int x1 = (int) ((b.getX() - worldX) * scale), y1 = (int) ((b.getY() - worldY) * scale);
+			int x2 = (int) ((b.getX() + size - worldX) * scale), y2 = (int) ((b.getY() + size - worldY) * scale);
+			if (x1 == x2 || y1 == y2) continue;
+			
+			BufferedImage batch = b.getBatch(scale);
+			g.drawImage(batch, x1, y1, x2, y2, 0, 0, batch.getWidth(), batch.getHeight(), null);
+		}
+		
+		g.dispose();
+	}
+	
+	/**
+	 * @return the scale blocks are drawn at, as of the last update
+	 */
+	public float getScale() {
+		return scale;
+	}
+	
+	@Override
+	public void enter() {}
+	
+	@Override
+	public void exit() {}
+}
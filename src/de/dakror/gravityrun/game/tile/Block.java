@@ -20,12 +20,14 @@ package de.dakror.gravityrun.game.tile;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
 import de.dakror.gravityrun.util.Palette;
+import de.dakror.gravityrun.util.Scratch;
 
 /**
  * Represents a 16x16 Region of tiles
@@ -36,6 +38,12 @@ public class Block {
 	public static final int TILE_SIZE = 16;
 	public static final int TILE_COUNT = 16;
 	
+	/**
+	 * Tile sizes of the downsampled batch levels, from least to most detailed.<br>
+	 * Zoomed out views and the minimap draw these instead of scaling the full batch every frame.
+	 */
+	public static final int[] LOD_TILE_SIZES = { 1, 4, 8 };
+	
 	float x, y;
 	
 	/**
@@ -45,8 +53,21 @@ public class Block {
 	 */
 	short[] tiles;
 	
+	/**
+	 * Full size prerendered tiles. Only created once it's drawn, so large imported maps don't have to hold one for every block.
+	 */
 	BufferedImage batch;
 	
+	/**
+	 * Downsampled batches, one per entry in {@link #LOD_TILE_SIZES}. Built on demand, reset on tile changes.
+	 */
+	BufferedImage[] lods = new BufferedImage[LOD_TILE_SIZES.length];
+	
+	/**
+	 * Incremented on every tile change, so views caching this block know when to redraw
+	 */
+	int version;
+	
 	/**
 	 * Lazy initialization for OPTIMAL EFFICIENCY
 	 */
@@ -54,14 +75,13 @@ public class Block {
 		if (isInitialized()) return;
 		
 		tiles = new short[TILE_COUNT * TILE_COUNT];
-		batch = new BufferedImage(TILE_COUNT * TILE_SIZE, TILE_COUNT * TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
 	}
 	
 	/**
 	 * @return true if this block has been initialized, false otherwise.
 	 */
 	public boolean isInitialized() {
-		return tiles != null && batch != null;
+		return tiles != null;
 	}
 	
 	/**
@@ -78,12 +98,17 @@ public class Block {
 		tiles[x * TILE_COUNT + y] = (short) colorIndex;
 		
 		if (old != get(x, y)) {
-			int rgb = Palette.instance.getWithAlpha(colorIndex).getRGB();
-			for (int i = 0; i < TILE_SIZE; i++) {
-				for (int j = 0; j < TILE_SIZE; j++) {
-					batch.setRGB(x + i, y + j, rgb);
+			if (batch != null) {
+				int rgb = Palette.instance.getRGBWithAlpha(colorIndex);
+				for (int i = 0; i < TILE_SIZE; i++) {
+					for (int j = 0; j < TILE_SIZE; j++) {
+						batch.setRGB(x * TILE_SIZE + i, y * TILE_SIZE + j, rgb);
+					}
 				}
 			}
+			
+			Arrays.fill(lods, null);
+			version++;
 		}
 	}
 	
@@ -230,18 +255,33 @@ public class Block {
 	}
 	
 	/**
-	 * Loads the block pixel by pixel from the image provided.
+	 * Loads the block from the image provided, mapping each pixel to the nearest palette color.
 	 * 
 	 * @param image
 	 */
 	public void load(BufferedImage image) {
 		if (image.getWidth() != TILE_COUNT || image.getHeight() != TILE_COUNT) throw new IllegalArgumentException("Invalid image size!");
 		
+		load(image.getRGB(0, 0, TILE_COUNT, TILE_COUNT, null, 0, TILE_COUNT), 0, TILE_COUNT);
+	}
+	
+	/**
+	 * Loads the block from a region of ARGB pixels, as returned by {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}.
+	 * 
+	 * @param pixels
+	 * @param offset index of the top left pixel of this block
+	 * @param scansize row length of the pixel array
+	 */
+	public void load(int[] pixels, int offset, int scansize) {
 		init();
 		
-		for (int i = 0; i < image.getWidth(); i++)
-			for (int j = 0; j < image.getHeight(); j++)
-				set(i, j, Palette.instance.indexOf(image.getRGB(i, j)));
+		for (int i = 0; i < TILE_COUNT; i++)
+			for (int j = 0; j < TILE_COUNT; j++)
+				tiles[i * TILE_COUNT + j] = (short) Palette.instance.quantize(pixels[offset + j * scansize + i]);
+		
+		batch = null;
+		Arrays.fill(lods, null);
+		version++;
 	}
 	
 	void checkInBounds(int x, int y) {
@@ -250,12 +290,119 @@ public class Block {
 	}
 	
 	/**
-	 * @return the prerendered batch of this block.
+	 * @return the prerendered batch of this block, rendered from the tiles if necessary.
 	 */
 	public BufferedImage getBatch() {
+		if (batch == null) batch = renderBatch(TILE_SIZE);
 		return batch;
 	}
 	
+	/**
+	 * Picks the cheapest batch that still has enough detail for the given scale.
+	 * 
+	 * @param scale the scale this block is going to be drawn at (1 = full size)
+	 * @return a downsampled batch, or the full one if no level is detailed enough.
+	 */
+	public BufferedImage getBatch(float scale) {
+		int level = getLevelOfDetail(scale);
+		if (level == -1) return getBatch();
+		return getLevelOfDetailBatch(level);
+	}
+	
+	/**
+	 * @param level index into {@link #LOD_TILE_SIZES}
+	 * @return the downsampled batch for that level, rendered from the tiles if necessary.
+	 */
+	public BufferedImage getLevelOfDetailBatch(int level) {
+		if (lods[level] == null) lods[level] = renderBatch(LOD_TILE_SIZES[level]);
+		return lods[level];
+	}
+	
+	/**
+	 * @return bytes held by the full and downsampled batches
+	 */
+	public long getMemoryUsage() {
+		long bytes = 0;
+		if (batch != null) bytes += 4L * batch.getWidth() * batch.getHeight();
+		for (BufferedImage lod : lods)
+			if (lod != null) bytes += 4L * lod.getWidth() * lod.getHeight();
+		
+		return bytes;
+	}
+	
+	/**
+	 * Drops all batches, they get rendered from the tiles again when needed.
+	 * 
+	 * @return bytes freed
+	 */
+	public long releaseBatches() {
+		return releaseBatches(-2);
+	}
+	
+	/**
+	 * Drops all batches but one, they get rendered from the tiles again when needed.
+	 * 
+	 * @param keepLevel index into {@link #LOD_TILE_SIZES} of the level to keep, -1 for the full batch
+	 * @return bytes freed
+	 */
+	public long releaseBatches(int keepLevel) {
+		long bytes = 0;
+		
+		if (batch != null && keepLevel != -1) {
+			bytes += 4L * batch.getWidth() * batch.getHeight();
+			batch = null;
+		}
+		
+		for (int i = 0; i < lods.length; i++) {
+			if (lods[i] != null && keepLevel != i) {
+				bytes += 4L * lods[i].getWidth() * lods[i].getHeight();
+				lods[i] = null;
+			}
+		}
+		
+		return bytes;
+	}
+	
+	/**
+	 * @param tileSize size of one tile in pixels
+	 * @return a new image with the tiles rendered into
+	 */
+	BufferedImage renderBatch(int tileSize) {
+		BufferedImage image = new BufferedImage(TILE_COUNT * tileSize, TILE_COUNT * tileSize, BufferedImage.TYPE_INT_ARGB);
+		render(image, tileSize);
+		return image;
+	}
+	
+	/**
+	 * Renders the tiles into the given image, each tile being a square of the given size.
+	 * 
+	 * @param image an ARGB image of TILE_COUNT * tileSize pixels
+	 * @param tileSize size of one tile in pixels
+	 */
+	void render(BufferedImage image, int tileSize) {
+		int size = TILE_COUNT * tileSize;
+		int[] pixels = Scratch.ints(size * size);
+		
+		for (int i = 0; i < TILE_COUNT; i++) {
+			for (int j = 0; j < TILE_COUNT; j++) {
+				int rgb = Palette.instance.getRGBWithAlpha(get(i, j));
+				for (int k = 0; k < tileSize; k++) {
+					int row = (j * tileSize + k) * size;
+					Arrays.fill(pixels, row + i * tileSize, row + (i + 1) * tileSize, rgb);
+				}
+			}
+		}
+		
+		image.getRaster().setDataElements(0, 0, size, size, pixels); // doesn't touch the DataBuffer, so the image stays accelerated
+	}
+	
+	/**
+	 * @return a counter that changes whenever a tile of this block changes
+	 */
+	public int getVersion() {
+		return version;
+	}
+	
 	public float getX() {
 		return x;
 	}
@@ -267,4 +414,22 @@ public class Block {
 	public float getY() {
 		return y;
 	}
+	
+	public void setY(float y) {
+		this.y = y;
+	}
+	
+	// -- statics -- //
+	
+	/**
+	 * @param scale the scale a block is going to be drawn at (1 = full size)
+	 * @return index into {@link #LOD_TILE_SIZES} of the smallest level with enough detail, -1 for the full batch.
+	 */
+	public static int getLevelOfDetail(float scale) {
+		float size = scale * TILE_SIZE;
+		for (int i = 0; i < LOD_TILE_SIZES.length; i++)
+			if (LOD_TILE_SIZES[i] >= size) return i;
+		
+		return -1;
+	}
 }
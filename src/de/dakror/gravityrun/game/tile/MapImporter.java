@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.game.tile;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+
+import de.dakror.gravityrun.util.Palette;
+
+/**
+ * Slices hand-drawn maps of any size into {@link Block}s.<br>
+ * Each pixel becomes a tile, so one block covers TILE_COUNT x TILE_COUNT pixels of the map.
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+public class MapImporter {
+	/**
+	 * Rows of blocks are read and sliced in parallel. Blocks that are fully transparent are left out.
+	 * 
+	 * @param image the map, doesn't need to be a multiple of TILE_COUNT in size
+	 * @param x world position of the map's top left corner
+	 * @param y world position of the map's top left corner
+	 * @return all non-empty blocks, row by row
+	 */
+	public static ArrayList<Block> load(BufferedImage image, float x, float y) {
+		int columns = (image.getWidth() + Block.TILE_COUNT - 1) / Block.TILE_COUNT;
+		int rows = (image.getHeight() + Block.TILE_COUNT - 1) / Block.TILE_COUNT;
+		int blockSize = Block.TILE_COUNT * Block.TILE_SIZE;
+		
+		Block[][] blocks = new Block[rows][];
+		
+		IntStream.range(0, rows).parallel().forEach(row -> {
+			blocks[row] = new Block[columns];
+			
+			int[] strip = readStrip(image, row, columns);
+			
+			for (int col = 0; col < columns; col++) {
+				if (isEmpty(strip, col * Block.TILE_COUNT, columns * Block.TILE_COUNT)) continue;
+				
+				Block b = new Block();
+				b.load(strip, col * Block.TILE_COUNT, columns * Block.TILE_COUNT);
+				b.setX(x + col * blockSize);
+				b.setY(y + row * blockSize);
+				blocks[row][col] = b;
+			}
+		});
+		
+		ArrayList<Block> list = new ArrayList<>();
+		for (Block[] row : blocks)
+			for (Block b : row)
+				if (b != null) list.add(b);
+		
+		return list;
+	}
+	
+	/**
+	 * Reads one row of blocks in a single call, padded with transparency where the map ends.
+	 */
+	static int[] readStrip(BufferedImage image, int row, int columns) {
+		int scansize = columns * Block.TILE_COUNT;
+		int[] strip = new int[scansize * Block.TILE_COUNT];
+		
+		int y = row * Block.TILE_COUNT;
+		int height = Math.min(Block.TILE_COUNT, image.getHeight() - y);
+		image.getRGB(0, y, image.getWidth(), height, strip, 0, scansize);
+		
+		return strip;
+	}
+	
+	/**
+	 * @return true if every pixel of the block maps to {@link Palette#TRANSPARENT}
+	 */
+	static boolean isEmpty(int[] strip, int offset, int scansize) {
+		int index = Palette.instance.getTransparentIndex();
+		
+		for (int j = 0; j < Block.TILE_COUNT; j++) {
+			for (int i = 0; i < Block.TILE_COUNT; i++) {
+				if (Palette.instance.quantize(strip[offset + j * scansize + i]) != index) return false;
+			}
+		}
+		
+		return true;
+	}
+}
@@ -77,11 +77,13 @@ public class LayerManager implements Drawable {
 	
 	@Override
 	public void draw(Graphics2D g) {
-		layers.forEach(l -> l.draw(g)); // sexy Java 8 for loop
+		for (int i = 0; i < layers.size(); i++) // no capturing lambda or iterator, called every frame
+			layers.get(i).draw(g);
 	}
 	
 	@Override
 	public void update(float deltaTime) {
-		layers.forEach(l -> l.update(deltaTime));
+		for (int i = 0; i < layers.size(); i++)
+			layers.get(i).update(deltaTime);
 	}
 }
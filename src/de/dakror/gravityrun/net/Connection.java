@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Non-blocking framing on top of a {@link SocketChannel}, shared by {@link GhostClient} and {@link GhostServer}.<br>
+ * Each frame is an int length followed by a type byte and the payload.
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+class Connection {
+	/**
+	 * Frame types
+	 */
+	static final byte ERROR = 0, SUBMIT = 1, RANK = 2, FETCH = 3, GHOSTS = 4;
+	
+	/**
+	 * Upper limit for a single frame, anything larger is treated as a broken stream.
+	 */
+	static final int MAX_FRAME = 1 << 22;
+	
+	SocketChannel channel;
+	
+	/**
+	 * Both buffers are kept in write mode.
+	 */
+	ByteBuffer in, out;
+	
+	Connection(SocketChannel channel) {
+		this.channel = channel;
+		in = ByteBuffer.allocate(8192);
+		out = ByteBuffer.allocate(8192);
+	}
+	
+	/**
+	 * Reads whatever is available right now.
+	 * 
+	 * @return false if the other side closed the connection
+	 */
+	boolean read() throws IOException {
+		if (!in.hasRemaining()) in = grow(in, in.capacity() * 2);
+		return channel.read(in) >= 0;
+	}
+	
+	/**
+	 * @return the next complete frame (type byte and payload) or null if there's none buffered yet.
+	 */
+	ByteBuffer nextFrame() throws IOException {
+		if (in.position() < 4) return null;
+		
+		int length = in.getInt(0);
+		if (length < 1 || length > MAX_FRAME) throw new IOException("Invalid frame length: " + length);
+		
+		if (in.position() < 4 + length) {
+			if (in.capacity() < 4 + length) in = grow(in, 4 + length);
+			return null;
+		}
+		
+		byte[] frame = new byte[length];
+		in.flip();
+		in.getInt();
+		in.get(frame);
+		in.compact();
+		
+		return ByteBuffer.wrap(frame);
+	}
+	
+	/**
+	 * @return true if a complete frame is buffered
+	 */
+	boolean hasFrame() {
+		return in.position() >= 4 && in.position() >= 4 + in.getInt(0);
+	}
+	
+	/**
+	 * Queues a frame for sending. Nothing is written until {@link #flush()} is called.
+	 * 
+	 * @param frame type byte and payload, ready to be read
+	 */
+	void send(ByteBuffer frame) {
+		if (out.remaining() < 4 + frame.remaining()) out = grow(out, Math.max(out.capacity() * 2, out.position() + 4 + frame.remaining()));
+		
+		out.putInt(frame.remaining());
+		out.put(frame);
+	}
+	
+	/**
+	 * Writes as much of the queued data as the socket takes right now.
+	 * 
+	 * @return true if everything has been written
+	 */
+	boolean flush() throws IOException {
+		out.flip();
+		channel.write(out);
+		out.compact();
+		
+		return out.position() == 0;
+	}
+	
+	/**
+	 * @return number of bytes waiting to be written
+	 */
+	int pending() {
+		return out.position();
+	}
+	
+	void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+		ByteBuffer b = ByteBuffer.allocate(capacity);
+		buffer.flip();
+		b.put(buffer);
+		return b;
+	}
+	
+	/**
+	 * @return a new frame with the given type and room for the payload
+	 */
+	static ByteBuffer frame(byte type, int payload) {
+		ByteBuffer b = ByteBuffer.allocate(1 + payload);
+		b.put(type);
+		return b;
+	}
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A recorded run, one position sample per tick. Can be played back to race against.
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+public class Ghost {
+	/**
+	 * Samples per second
+	 */
+	public static final int TICK_RATE = 60;
+	
+	/**
+	 * Longest run that is accepted from the network, 30 minutes
+	 */
+	public static final int MAX_TICKS = TICK_RATE * 60 * 30;
+	
+	/**
+	 * Positions are stored as fixed point values with this many steps per pixel
+	 */
+	static final float PRECISION = 16f;
+	
+	long seed;
+	String name;
+	
+	float[] xs, ys;
+	int ticks;
+	
+	/**
+	 * Current playback position
+	 * 
+	 * @see #seek(float)
+	 */
+	float x, y;
+	
+	public Ghost(long seed, String name) {
+		this.seed = seed;
+		this.name = name;
+		
+		xs = new float[TICK_RATE * 10];
+		ys = new float[TICK_RATE * 10];
+	}
+	
+	/**
+	 * Appends the sample for the next tick.
+	 */
+	public void record(float x, float y) {
+		if (ticks == xs.length) {
+			xs = Arrays.copyOf(xs, ticks * 2);
+			ys = Arrays.copyOf(ys, ticks * 2);
+		}
+		
+		xs[ticks] = x;
+		ys[ticks] = y;
+		ticks++;
+	}
+	
+	/**
+	 * Moves the playback position to the given tick, interpolating between the two nearest samples.<br>
+	 * Doesn't allocate anything, so it's safe to call every frame.
+	 * 
+	 * @param tick fractional tick since the start of the run
+	 */
+	public void seek(float tick) {
+		if (ticks == 0) return;
+		
+		if (tick <= 0) {
+			x = xs[0];
+			y = ys[0];
+		} else if (tick >= ticks - 1) {
+			x = xs[ticks - 1];
+			y = ys[ticks - 1];
+		} else {
+			int i = (int) tick;
+			float f = tick - i;
+			x = xs[i] + (xs[i + 1] - xs[i]) * f;
+			y = ys[i] + (ys[i + 1] - ys[i]) * f;
+		}
+	}
+	
+	/**
+	 * @return true if the playback has reached the last sample
+	 */
+	public boolean isFinished(float tick) {
+		return tick >= ticks - 1;
+	}
+	
+	/**
+	 * Layout: seed (long), ticks (int), name (short length + UTF-8), deflated samples.<br>
+	 * The samples are delta encoded fixed point values, which deflate very well for continuous movement.
+	 * 
+	 * @return the compressed representation of this ghost.
+	 */
+	public byte[] serialize() {
+		ByteBuffer raw = ByteBuffer.allocate(8 * ticks);
+		int lastX = 0, lastY = 0;
+		for (int i = 0; i < ticks; i++) {
+			int fx = Math.round(xs[i] * PRECISION);
+			int fy = Math.round(ys[i] * PRECISION);
+			raw.putInt(fx - lastX);
+			raw.putInt(fy - lastY);
+			lastX = fx;
+			lastY = fy;
+		}
+		
+		byte[] nameData = name.getBytes(StandardCharsets.UTF_8);
+		
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(raw.capacity() / 4 + 64);
+		Deflater deflater = new Deflater(9);
+		try (DataOutputStream dos = new DataOutputStream(baos)) {
+			dos.writeLong(seed);
+			dos.writeInt(ticks);
+			dos.writeShort(nameData.length);
+			dos.write(nameData);
+			
+			DeflaterOutputStream dfos = new DeflaterOutputStream(dos, deflater);
+			dfos.write(raw.array());
+			dfos.finish();
+		} catch (IOException e) {
+			e.printStackTrace(); // can't happen on a byte array
+		}
+		deflater.end();
+		
+		return baos.toByteArray();
+	}
+	
+	/**
+	 * Takes the data produced in {@link #serialize()} and reverses the process.
+	 * 
+	 * @param data the remaining bytes of this buffer are read
+	 * @throws IllegalArgumentException if the data is corrupt or longer than {@link #MAX_TICKS}
+	 */
+	public static Ghost deserialize(ByteBuffer data) {
+		try {
+			long seed = data.getLong();
+			int ticks = data.getInt();
+			if (ticks < 0 || ticks > MAX_TICKS) throw new IllegalArgumentException("Corrupt ghost data!");
+			
+			byte[] nameData = new byte[data.getShort() & 0xffff];
+			data.get(nameData);
+			
+			// arrays grow with the samples actually read, the tick count in the header can't be trusted
+			Ghost ghost = new Ghost(seed, new String(nameData, StandardCharsets.UTF_8));
+			
+			byte[] compressed = new byte[data.remaining()];
+			data.get(compressed);
+			
+			try (DataInputStream dis = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed)))) {
+				int fx = 0, fy = 0;
+				for (int i = 0; i < ticks; i++) {
+					fx += dis.readInt();
+					fy += dis.readInt();
+					ghost.record(fx / PRECISION, fy / PRECISION);
+				}
+			}
+			
+			ghost.seek(0);
+			return ghost;
+		} catch (IOException | BufferUnderflowException e) {
+			throw new IllegalArgumentException("Corrupt ghost data!", e);
+		}
+	}
+	
+	public long getSeed() {
+		return seed;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public int getTicks() {
+		return ticks;
+	}
+	
+	/**
+	 * @return length of the run in seconds
+	 */
+	public float getTime() {
+		return ticks / (float) TICK_RATE;
+	}
+	
+	public float getX() {
+		return x;
+	}
+	
+	public float getY() {
+		return y;
+	}
+}
@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Asynchronous client for the ghost leaderboard. All I/O happens on a background thread, so none of the methods ever block.<br>
+ * The returned futures are completed on that thread, the game loop should just poll them with {@link CompletableFuture#isDone()}.
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+public class GhostClient implements Runnable {
+	/**
+	 * Maximum number of requests in flight. Anything beyond that is rejected right away instead of piling up.
+	 */
+	public static final int MAX_PENDING = 64;
+	
+	/**
+	 * Milliseconds a request may take before it fails with a {@link TimeoutException}
+	 */
+	public static final int DEFAULT_TIMEOUT = 10_000;
+	
+	static class Request<T> {
+		ByteBuffer frame;
+		Function<ByteBuffer, T> reader;
+		CompletableFuture<T> future = new CompletableFuture<>();
+		
+		/**
+		 * System.nanoTime() after which the request times out
+		 */
+		long deadline;
+		
+		/**
+		 * Set once the request got its response, failed or timed out. Its permit is released exactly then.
+		 */
+		AtomicBoolean finished = new AtomicBoolean();
+		
+		Request(ByteBuffer frame, Function<ByteBuffer, T> reader) {
+			this.frame = frame;
+			this.reader = reader;
+		}
+		
+		void complete(ByteBuffer response) {
+			try {
+				if (response.get() == Connection.ERROR) future.completeExceptionally(new IOException(StandardCharsets.UTF_8.decode(response).toString()));
+				else future.complete(reader.apply(response));
+			} catch (RuntimeException | OutOfMemoryError e) {
+				future.completeExceptionally(e); // never let a bad response kill the client thread
+			}
+		}
+	}
+	
+	InetSocketAddress address;
+	int timeout;
+	Selector selector;
+	Thread thread;
+	volatile boolean running;
+	
+	Semaphore permits = new Semaphore(MAX_PENDING);
+	ConcurrentLinkedQueue<Request<?>> queue = new ConcurrentLinkedQueue<>();
+	
+	/**
+	 * Requests already sent, in order. Only touched by the client thread.<br>
+	 * Timed out requests stay in here until their late response arrives, so the following responses still match up.
+	 */
+	ArrayDeque<Request<?>> inFlight = new ArrayDeque<>();
+	
+	/**
+	 * Connects in the background, requests made in the meantime are queued.
+	 */
+	public GhostClient(String host, int port) throws IOException {
+		this(host, port, DEFAULT_TIMEOUT);
+	}
+	
+	/**
+	 * @param timeout milliseconds until a request fails with a {@link TimeoutException}, counted from the call
+	 */
+	public GhostClient(String host, int port, int timeout) throws IOException {
+		address = new InetSocketAddress(host, port);
+		this.timeout = timeout;
+		selector = Selector.open();
+		
+		running = true;
+		thread = new Thread(this, "GhostClient");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Uploads a finished run.
+	 * 
+	 * @return the rank on the leaderboard of the ghost's seed, starting at 1, or -1 if it didn't make it.
+	 */
+	public CompletableFuture<Integer> submit(Ghost ghost) {
+		if (ghost.getTicks() > Ghost.MAX_TICKS) {
+			CompletableFuture<Integer> f = new CompletableFuture<>();
+			f.completeExceptionally(new IllegalArgumentException("Ghost is too long!"));
+			return f;
+		}
+		
+		byte[] data = ghost.serialize();
+		ByteBuffer b = Connection.frame(Connection.SUBMIT, data.length);
+		b.put(data);
+		b.flip();
+		
+		return enqueue(b, r -> r.getInt());
+	}
+	
+	/**
+	 * Downloads the fastest ghosts for a seed.
+	 * 
+	 * @param count maximum number of ghosts
+	 */
+	public CompletableFuture<List<Ghost>> fetch(long seed, int count) {
+		ByteBuffer b = Connection.frame(Connection.FETCH, 12);
+		b.putLong(seed);
+		b.putInt(count);
+		b.flip();
+		
+		return enqueue(b, r -> {
+			int n = r.getInt();
+			ArrayList<Ghost> ghosts = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) {
+				ByteBuffer data = r.slice();
+				int length = data.getInt();
+				data.limit(4 + length);
+				ghosts.add(Ghost.deserialize(data));
+				r.position(r.position() + 4 + length);
+			}
+			return ghosts;
+		});
+	}
+	
+	<T> CompletableFuture<T> enqueue(ByteBuffer frame, Function<ByteBuffer, T> reader) {
+		Request<T> r = new Request<>(frame, reader);
+		r.deadline = System.nanoTime() + timeout * 1_000_000L;
+		
+		if (!permits.tryAcquire()) r.future.completeExceptionally(new RejectedExecutionException("Too many pending requests!"));
+		else {
+			queue.add(r);
+			if (running) selector.wakeup();
+			else failQueued(new IOException("Client is closed!"));
+		}
+		
+		return r.future;
+	}
+	
+	public void close() {
+		running = false;
+		selector.wakeup();
+	}
+	
+	@Override
+	public void run() {
+		Exception cause = new IOException("Client is closed!");
+		Connection c = null;
+		
+		try {
+			SocketChannel channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			c = new Connection(channel);
+			SelectionKey key = channel.register(selector, channel.connect(address) ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT);
+			
+			while (running) {
+				selector.select(expire());
+				selector.selectedKeys().clear();
+				
+				// requests stay queued until the connection is up
+				if (!channel.isConnected()) {
+					if (!channel.finishConnect()) continue;
+					key.interestOps(SelectionKey.OP_READ);
+				}
+				
+				if (!c.read()) throw new IOException("Connection closed by server!");
+				
+				ByteBuffer frame;
+				while ((frame = c.nextFrame()) != null) {
+					Request<?> r = inFlight.poll();
+					if (r == null) throw new IOException("Unexpected response!");
+					
+					if (finish(r)) r.complete(frame);
+				}
+				
+				Request<?> r;
+				while ((r = queue.poll()) != null) {
+					c.send(r.frame);
+					inFlight.add(r);
+				}
+				
+				if (inFlight.size() > 2 * MAX_PENDING) throw new IOException("Server is not responding!");
+				
+				key.interestOps(c.flush() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
+		} catch (IOException e) {
+			cause = e;
+		} finally {
+			running = false;
+			if (c != null) c.close();
+			
+			try {
+				selector.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			
+			failAll(cause);
+		}
+	}
+	
+	/**
+	 * Fails all requests past their deadline.
+	 * 
+	 * @return milliseconds until the next deadline, 0 if there's none
+	 */
+	long expire() {
+		long now = System.nanoTime();
+		long next = Long.MAX_VALUE;
+		
+		for (Request<?> r : inFlight)
+			next = Math.min(next, expire(r, now));
+		for (Request<?> r : queue)
+			next = Math.min(next, expire(r, now));
+		
+		return next == Long.MAX_VALUE ? 0 : Math.max(1, next / 1_000_000 + 1);
+	}
+	
+	/**
+	 * @return nanoseconds until the request's deadline, Long.MAX_VALUE if it's finished
+	 */
+	long expire(Request<?> r, long now) {
+		if (r.finished.get()) return Long.MAX_VALUE;
+		
+		if (now - r.deadline >= 0) {
+			fail(r, new TimeoutException("No response from server!"));
+			return Long.MAX_VALUE;
+		}
+		
+		return r.deadline - now;
+	}
+	
+	/**
+	 * Marks the request as finished and releases its permit.
+	 * 
+	 * @return false if it was already finished before
+	 */
+	boolean finish(Request<?> r) {
+		if (!r.finished.compareAndSet(false, true)) return false;
+		
+		permits.release();
+		return true;
+	}
+	
+	void fail(Request<?> r, Exception cause) {
+		if (finish(r)) r.future.completeExceptionally(cause);
+	}
+	
+	void failAll(Exception cause) {
+		Request<?> r;
+		while ((r = inFlight.poll()) != null)
+			fail(r, cause);
+		
+		failQueued(cause);
+	}
+	
+	/**
+	 * Safe to call from any thread, unlike {@link #failAll(Exception)}.
+	 */
+	void failQueued(Exception cause) {
+		Request<?> r;
+		while ((r = queue.poll()) != null)
+			fail(r, cause);
+	}
+	
+	public boolean isRunning() {
+		return running;
+	}
+}
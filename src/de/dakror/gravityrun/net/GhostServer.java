@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import de.dakror.gravityrun.util.D;
+
+/**
+ * Minimal leaderboard server keeping the fastest ghosts per seed in memory.<br>
+ * Serves as reference implementation and lets the ghost race be played and tested offline, either in-process or on localhost.
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+public class GhostServer implements Runnable {
+	public static final int DEFAULT_PORT = 19321;
+	
+	/**
+	 * Number of ghosts kept per seed
+	 */
+	public static final int MAX_GHOSTS = 100;
+	
+	/**
+	 * Once this many bytes are waiting to be sent to a client, its requests aren't processed any further until they are written.
+	 */
+	static final int HIGH_WATER = 1 << 18;
+	
+	static class Entry {
+		int ticks;
+		byte[] data;
+		
+		Entry(int ticks, byte[] data) {
+			this.ticks = ticks;
+			this.data = data;
+		}
+	}
+	
+	ServerSocketChannel server;
+	Selector selector;
+	Thread thread;
+	volatile boolean running;
+	
+	/**
+	 * Only touched by the server thread. Sorted by ticks, fastest first.
+	 */
+	HashMap<Long, ArrayList<Entry>> leaderboards = new HashMap<>();
+	
+	/**
+	 * Binds to the loopback interface.
+	 * 
+	 * @param port 0 picks a free port, see {@link #getPort()}
+	 */
+	public GhostServer(int port) throws IOException {
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+	}
+	
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+	
+	/**
+	 * Runs the server on a background thread.
+	 */
+	public GhostServer start() {
+		running = true;
+		thread = new Thread(this, "GhostServer");
+		thread.setDaemon(true);
+		thread.start();
+		return this;
+	}
+	
+	public void close() {
+		running = false;
+		selector.wakeup();
+		if (thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	@Override
+	public void run() {
+		try {
+			while (running) {
+				selector.select();
+				
+				Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+				while (iter.hasNext()) {
+					SelectionKey key = iter.next();
+					iter.remove();
+					
+					try {
+						if (!key.isValid()) continue;
+						if (key.isAcceptable()) accept();
+						else {
+							Connection c = (Connection) key.attachment();
+							if (key.isWritable()) c.flush();
+							if (key.isReadable() && !c.read()) {
+								disconnect(key);
+								continue;
+							}
+							process(key, c);
+						}
+					} catch (IOException e) {
+						disconnect(key);
+					}
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			for (SelectionKey key : selector.keys())
+				disconnect(key);
+			
+			try {
+				selector.close();
+				server.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = server.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+		}
+	}
+	
+	void disconnect(SelectionKey key) {
+		key.cancel();
+		if (key.attachment() instanceof Connection) ((Connection) key.attachment()).close();
+	}
+	
+	/**
+	 * Handles buffered requests as long as the client keeps up with reading the responses.
+	 */
+	void process(SelectionKey key, Connection c) throws IOException {
+		ByteBuffer frame;
+		
+		// keep going while flushing makes room, the client might not send anything else until it got all responses
+		do {
+			while (c.pending() < HIGH_WATER && (frame = c.nextFrame()) != null)
+				c.send(handle(frame));
+			
+			c.flush();
+		} while (c.pending() < HIGH_WATER && c.hasFrame());
+		
+		// stop reading from clients that don't read their responses, writing resumes processing
+		int ops = c.pending() < HIGH_WATER ? SelectionKey.OP_READ : 0;
+		if (c.pending() > 0) ops |= SelectionKey.OP_WRITE;
+		key.interestOps(ops);
+	}
+	
+	ByteBuffer handle(ByteBuffer frame) {
+		try {
+			switch (frame.get()) {
+				case Connection.SUBMIT:
+					return submit(frame);
+				case Connection.FETCH:
+					return fetch(frame.getLong(), frame.getInt());
+				default:
+					return error("Unknown request!");
+			}
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			return error("Malformed request!");
+		}
+	}
+	
+	/**
+	 * The ghost is fully decoded once to make sure it's valid, but stored as it came in.
+	 */
+	ByteBuffer submit(ByteBuffer frame) {
+		byte[] data = new byte[frame.remaining()];
+		frame.get(data);
+		
+		Ghost ghost = Ghost.deserialize(ByteBuffer.wrap(data));
+		long seed = ghost.getSeed();
+		int ticks = ghost.getTicks();
+		if (ticks <= 0) throw new IllegalArgumentException();
+		
+		ArrayList<Entry> board = leaderboards.computeIfAbsent(seed, k -> new ArrayList<>());
+		
+		int rank = board.size();
+		while (rank > 0 && board.get(rank - 1).ticks > ticks)
+			rank--;
+		
+		if (rank < MAX_GHOSTS) {
+			board.add(rank, new Entry(ticks, data));
+			if (board.size() > MAX_GHOSTS) board.remove(board.size() - 1);
+		} else rank = -1;
+		
+		ByteBuffer b = Connection.frame(Connection.RANK, 4);
+		b.putInt(rank == -1 ? -1 : rank + 1);
+		b.flip();
+		return b;
+	}
+	
+	/**
+	 * Returns fewer ghosts than asked for if they wouldn't fit into a single frame.
+	 */
+	ByteBuffer fetch(long seed, int count) {
+		ArrayList<Entry> board = leaderboards.get(seed);
+		int limit = board == null ? 0 : Math.max(0, Math.min(count, board.size()));
+		
+		int size = 4, n = 0;
+		while (n < limit && 1 + size + 4 + board.get(n).data.length <= Connection.MAX_FRAME) {
+			size += 4 + board.get(n).data.length;
+			n++;
+		}
+		
+		ByteBuffer b = Connection.frame(Connection.GHOSTS, size);
+		b.putInt(n);
+		for (int i = 0; i < n; i++) {
+			b.putInt(board.get(i).data.length);
+			b.put(board.get(i).data);
+		}
+		b.flip();
+		return b;
+	}
+	
+	ByteBuffer error(String message) {
+		byte[] data = message.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer b = Connection.frame(Connection.ERROR, data.length);
+		b.put(data);
+		b.flip();
+		return b;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		GhostServer server = new GhostServer(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT);
+		D.p("GhostServer listening on port " + server.getPort());
+		server.running = true;
+		server.run();
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.ui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+
+import de.dakror.gravityrun.layer.Layer;
+import de.dakror.gravityrun.util.MemoryGovernor;
+
+/**
+ * Instrumentation overlay showing heap and per subsystem memory usage. Toggled with F3.<br>
+ * The text is only rebuilt when the {@link MemoryGovernor} did a new check, not every frame.
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+public class StatsOverlay implements Layer {
+	public static final int LINE_HEIGHT = 15;
+	
+	int x, y;
+	
+	/**
+	 * Toggled on the event dispatch thread, read by the main loop
+	 */
+	volatile boolean visible;
+	
+	int checks = -1;
+	String[] lines = new String[0];
+	
+	public StatsOverlay(int x, int y) {
+		this.x = x;
+		this.y = y;
+	}
+	
+	@Override
+	public void draw(Graphics2D g) {
+		if (!visible) return;
+		
+		if (checks != MemoryGovernor.instance.getChecks()) rebuild();
+		
+		g.setColor(Color.black);
+		g.fillRect(x, y, 260, lines.length * LINE_HEIGHT + 6);
+		g.setColor(Color.white);
+		for (int i = 0; i < lines.length; i++)
+			g.drawString(lines[i], x + 4, y + (i + 1) * LINE_HEIGHT);
+	}
+	
+	void rebuild() {
+		MemoryGovernor mg = MemoryGovernor.instance;
+		Runtime rt = Runtime.getRuntime();
+		checks = mg.getChecks();
+		
+		int count = mg.getSubsystemCount();
+		lines = new String[count + 2];
+		lines[0] = "Heap: " + mb(rt.totalMemory() - rt.freeMemory()) + " / " + mb(rt.maxMemory());
+		lines[1] = "Tracked: " + mb(mg.getUsage()) + " / " + mb(mg.getBudget()) + ", released " + mb(mg.getReleased());
+		for (int i = 0; i < count; i++)
+			lines[i + 2] = "  " + mg.getSubsystemName(i) + ": " + mb(mg.getSubsystemUsage(i));
+	}
+	
+	static String mb(long bytes) {
+		return String.format("%.1f MB", bytes / (1024 * 1024f));
+	}
+	
+	@Override
+	public void update(float deltaTime) {}
+	
+	@Override
+	public void enter() {}
+	
+	@Override
+	public void exit() {}
+	
+	public void toggle() {
+		visible = !visible;
+	}
+	
+	public boolean isVisible() {
+		return visible;
+	}
+}
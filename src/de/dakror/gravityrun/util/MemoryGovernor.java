@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+/**
+ * Central bookkeeping of memory hungry caches.<br>
+ * Subsystems report how much they hold, and once the total exceeds the budget, the ones cheapest to rebuild are asked to release data first.<br>
+ * Everything but the {@link MemoryGovernorMXBean} getters runs on the game thread, so subsystems don't have to synchronize.
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+public class MemoryGovernor implements MemoryGovernorMXBean {
+	/**
+	 * Anything holding memory that can be rebuilt on demand.
+	 */
+	public interface Subsystem {
+		public String getName();
+		
+		/**
+		 * @return estimated size of the held data in bytes
+		 */
+		public long getMemoryUsage();
+		
+		/**
+		 * Subsystems with a lower cost are released first.
+		 */
+		public int getReleaseCost();
+		
+		/**
+		 * Drops data that can be rebuilt later, least needed first.
+		 * 
+		 * @param bytes how much should be freed at least
+		 * @return how much has been freed
+		 */
+		public long release(long bytes);
+	}
+	
+	/**
+	 * Seconds between two checks
+	 */
+	public static final float CHECK_INTERVAL = 1;
+	
+	/**
+	 * When releasing, usage is brought down to this fraction of the budget, so we don't release again right away
+	 */
+	public static final float LOW_WATER = 0.8f;
+	
+	/**
+	 * Global only instance
+	 */
+	public static final MemoryGovernor instance = new MemoryGovernor();
+	
+	/**
+	 * Sorted by release cost
+	 */
+	ArrayList<Subsystem> subsystems = new ArrayList<>();
+	
+	/**
+	 * Usage per subsystem, as of the last check
+	 */
+	long[] usages = new long[0];
+	
+	volatile long budget;
+	volatile long usage, released;
+	volatile int checks;
+	volatile boolean checkRequested;
+	
+	float timer;
+	
+	private MemoryGovernor() {
+		long mb = Long.getLong("gravityrun.memoryBudget", Runtime.getRuntime().maxMemory() / 2 / (1024 * 1024));
+		budget = mb * 1024 * 1024;
+		
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("de.dakror.gravityrun:type=MemoryGovernor"));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+	
+	public synchronized void register(Subsystem s) {
+		if (subsystems.contains(s)) return;
+		
+		int i = 0;
+		while (i < subsystems.size() && subsystems.get(i).getReleaseCost() <= s.getReleaseCost())
+			i++;
+		
+		subsystems.add(i, s);
+		usages = new long[subsystems.size()];
+	}
+	
+	public synchronized void unregister(Subsystem s) {
+		if (subsystems.remove(s)) usages = new long[subsystems.size()];
+	}
+	
+	/**
+	 * Checks the usage every {@link #CHECK_INTERVAL} seconds and releases data if it's over budget.
+	 * 
+	 * @param deltaTime the time in seconds since the last frame
+	 */
+	public void update(float deltaTime) {
+		timer += deltaTime;
+		if (timer < CHECK_INTERVAL && !checkRequested) return;
+		
+		timer = 0;
+		checkRequested = false;
+		check();
+	}
+	
+	synchronized void check() {
+		long total = measure();
+		
+		if (total > budget) {
+			long target = total - (long) (budget * LOW_WATER);
+			for (int i = 0; i < subsystems.size() && target > 0; i++) {
+				long freed = subsystems.get(i).release(target);
+				target -= freed;
+				released += freed;
+			}
+			
+			total = measure();
+		}
+		
+		usage = total;
+		checks++;
+	}
+	
+	long measure() {
+		long total = 0;
+		for (int i = 0; i < subsystems.size(); i++) {
+			usages[i] = subsystems.get(i).getMemoryUsage();
+			total += usages[i];
+		}
+		
+		return total;
+	}
+	
+	/**
+	 * @return the number of checks done so far, to tell if the usage values changed.
+	 */
+	public int getChecks() {
+		return checks;
+	}
+	
+	public synchronized int getSubsystemCount() {
+		return subsystems.size();
+	}
+	
+	public synchronized String getSubsystemName(int index) {
+		return subsystems.get(index).getName();
+	}
+	
+	/**
+	 * @return the usage of the subsystem in bytes, as of the last check
+	 */
+	public synchronized long getSubsystemUsage(int index) {
+		return usages[index];
+	}
+	
+	// -- MXBean -- //
+	
+	@Override
+	public long getBudget() {
+		return budget;
+	}
+	
+	@Override
+	public void setBudget(long budget) {
+		this.budget = budget;
+		checkRequested = true;
+	}
+	
+	@Override
+	public long getUsage() {
+		return usage;
+	}
+	
+	@Override
+	public long getReleased() {
+		return released;
+	}
+	
+	@Override
+	public synchronized Map<String, Long> getUsageBySubsystem() {
+		LinkedHashMap<String, Long> map = new LinkedHashMap<>();
+		for (int i = 0; i < subsystems.size(); i++)
+			map.put(subsystems.get(i).getName(), usages[i]);
+		
+		return map;
+	}
+	
+	@Override
+	public void requestCheck() {
+		checkRequested = true;
+	}
+}
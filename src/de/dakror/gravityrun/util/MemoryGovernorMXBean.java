@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.util;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link MemoryGovernor}, registered as <code>de.dakror.gravityrun:type=MemoryGovernor</code>.
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+public interface MemoryGovernorMXBean {
+	/**
+	 * @return the budget in bytes
+	 */
+	public long getBudget();
+	
+	/**
+	 * Takes effect with the next check on the game thread.
+	 * 
+	 * @param budget in bytes
+	 */
+	public void setBudget(long budget);
+	
+	/**
+	 * @return the total usage of all subsystems in bytes, as of the last check
+	 */
+	public long getUsage();
+	
+	/**
+	 * @return bytes released since the start
+	 */
+	public long getReleased();
+	
+	public Map<String, Long> getUsageBySubsystem();
+	
+	/**
+	 * Checks the usage on the next frame, instead of waiting for the interval.
+	 */
+	public void requestCheck();
+}
@@ -33,6 +33,11 @@ public class Palette {
 	 */
 	public static final int STEP = 8;
 	
+	/**
+	 * Number of values per color channel
+	 */
+	public static final int LEVELS = 256 / STEP + 1;
+	
 	/**
 	 * This color serves as fake-transparency. That way we don't have to mess with alpha values anywhere.<br>
 	 * Fully transparent or opaque.
@@ -47,6 +52,18 @@ public class Palette {
 	
 	ArrayList<Color> colors;
 	
+	/**
+	 * Maps every channel value (0 - 255) to the nearest level in the palette
+	 */
+	int[] levels;
+	
+	/**
+	 * Plain ARGB values of all colors, so the hot paths don't have to go through {@link Color}
+	 */
+	int[] rgbs, rgbsWithAlpha;
+	
+	int transparentIndex;
+	
 	protected Palette() {
 		colors = new ArrayList<Color>();
 		
@@ -54,6 +71,20 @@ public class Palette {
 			for (int j = 0; j <= 256; j += STEP)
 				for (int k = 0; k <= 256; k += STEP)
 					colors.add(new Color(Math.max(0, i - 1), Math.max(0, j - 1), Math.max(0, k - 1))); // colors go from 0 - 255, so meh :/
+		
+		levels = new int[256];
+		for (int i = 0; i < 256; i++)
+			for (int j = 1; j < LEVELS; j++)
+				if (Math.abs(Math.max(0, j * STEP - 1) - i) < Math.abs(Math.max(0, levels[i] * STEP - 1) - i)) levels[i] = j;
+		
+		rgbs = new int[colors.size()];
+		rgbsWithAlpha = new int[colors.size()];
+		for (int i = 0; i < rgbs.length; i++) {
+			rgbs[i] = colors.get(i).getRGB();
+			rgbsWithAlpha[i] = colors.get(i).equals(TRANSPARENT) ? TRANSPARENT_RGBA.getRGB() : rgbs[i];
+		}
+		
+		transparentIndex = indexOf(TRANSPARENT);
 	}
 	
 	public int size() {
@@ -61,15 +92,41 @@ public class Palette {
 	}
 	
 	public int indexOf(Color c) {
-		return colors.indexOf(c);
+		if (c.getAlpha() != 255) return -1;
+		return indexOf(c.getRGB());
 	}
 	
 	public boolean contains(Color c) {
-		return colors.contains(c);
+		return indexOf(c) != -1;
 	}
 	
+	/**
+	 * @param rgb alpha is ignored
+	 * @return the index of that exact color or -1 if it's not in the palette
+	 */
 	public int indexOf(int rgb) {
-		return colors.indexOf(new Color(rgb));
+		rgb |= 0xff000000;
+		int index = quantize(rgb);
+		return rgbs[index] == rgb ? index : -1;
+	}
+	
+	/**
+	 * Maps any color to the nearest one in the palette, using a lookup table instead of searching.<br>
+	 * Pixels that are more than half transparent map to {@link #TRANSPARENT}.
+	 * 
+	 * @param argb a color as returned by {@link java.awt.image.BufferedImage#getRGB(int, int)}
+	 * @return the index of the nearest palette color
+	 */
+	public int quantize(int argb) {
+		if ((argb >>> 24) < 128) return transparentIndex;
+		return (levels[(argb >> 16) & 0xff] * LEVELS + levels[(argb >> 8) & 0xff]) * LEVELS + levels[argb & 0xff];
+	}
+	
+	/**
+	 * @return the index of {@link #TRANSPARENT}
+	 */
+	public int getTransparentIndex() {
+		return transparentIndex;
 	}
 	
 	public Color get(int index) {
@@ -82,6 +139,13 @@ public class Palette {
 	}
 	
 	public int getRGB(int index) {
-		return get(index).getRGB();
+		return rgbs[index];
+	}
+	
+	/**
+	 * Same as {@link #getWithAlpha(int)}.getRGB(), without the lookup.
+	 */
+	public int getRGBWithAlpha(int index) {
+		return rgbsWithAlpha[index];
 	}
 }
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.util;
+
+import java.util.function.Supplier;
+
+/**
+ * Keeps freed objects around for reuse, so short lived things like projectiles and particles don't produce garbage every frame.<br>
+ * Not thread safe, meant to be used from the game loop only.
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+public class Pool<T> {
+	/**
+	 * Objects implementing this get reset when they are freed.
+	 */
+	public interface Poolable {
+		public void reset();
+	}
+	
+	Supplier<T> factory;
+	
+	Object[] free;
+	int size;
+	
+	/**
+	 * @param factory creates new objects whenever the pool is empty
+	 * @param max maximum number of free objects kept, the rest is left to the GC
+	 */
+	public Pool(Supplier<T> factory, int max) {
+		this.factory = factory;
+		free = new Object[max];
+	}
+	
+	/**
+	 * @return a free object or a new one if there's none left.
+	 */
+	@SuppressWarnings("unchecked")
+	public T obtain() {
+		if (size == 0) return factory.get();
+		
+		T t = (T) free[--size];
+		free[size] = null;
+		return t;
+	}
+	
+	/**
+	 * Puts an object back into the pool. It must not be used by the caller anymore.<br>
+	 * Freeing an object that is already in the pool would later hand it out twice, so that's rejected.
+	 * 
+	 * @throws IllegalArgumentException if the object is null or already free
+	 */
+	public void free(T t) {
+		if (t == null) throw new IllegalArgumentException("Can't free null!");
+		for (int i = 0; i < size; i++)
+			if (free[i] == t) throw new IllegalArgumentException("Object has already been freed!");
+		
+		if (t instanceof Poolable) ((Poolable) t).reset();
+		if (size < free.length) free[size++] = t;
+	}
+	
+	/**
+	 * Creates objects up front, e.g. while loading, so the first frames don't allocate.
+	 * 
+	 * @param count number of objects to add, limited by the maximum
+	 */
+	public void fill(int count) {
+		while (count-- > 0 && size < free.length)
+			free[size++] = factory.get();
+	}
+	
+	/**
+	 * @return number of free objects
+	 */
+	public int getFree() {
+		return size;
+	}
+	
+	public int getMax() {
+		return free.length;
+	}
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.util;
+
+/**
+ * Reusable per-thread scratch buffers for temporary data, so hot paths don't allocate fresh arrays every call.<br>
+ * The contents are undefined and only valid until the next call on the same thread.
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+public class Scratch {
+	static final ThreadLocal<int[]> ints = ThreadLocal.withInitial(() -> new int[0]);
+	
+	/**
+	 * @param size minimum length
+	 * @return an int array of at least the given length
+	 */
+	public static int[] ints(int size) {
+		int[] a = ints.get();
+		if (a.length < size) {
+			a = new int[size];
+			ints.set(a);
+		}
+		
+		return a;
+	}
+}
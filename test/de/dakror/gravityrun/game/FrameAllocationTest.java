@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.game;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+import de.dakror.gravityrun.game.tile.MapImporter;
+import de.dakror.gravityrun.layer.LayerManager;
+import de.dakror.gravityrun.net.Ghost;
+import de.dakror.gravityrun.ui.StatsOverlay;
+import de.dakror.gravityrun.util.D;
+import de.dakror.gravityrun.util.MemoryGovernor;
+import de.dakror.gravityrun.util.Pool;
+
+/**
+ * Allocation regression test for the per-frame hot path, run headless.<br>
+ * Runs the same update and draw calls as {@link de.dakror.gravityrun.GravityRun} into an offscreen image and fails if a steady-state frame allocates anything.<br>
+ * Run with the compiled sources, the assets and the tests on the classpath: <code>java de.dakror.gravityrun.game.FrameAllocationTest</code><br>
+ * Exits with status 1 on failure.
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+public class FrameAllocationTest {
+	public static final int WARMUP_FRAMES = 3000;
+	public static final int FRAMES = 1000;
+	public static final int ROUNDS = 5;
+	
+	/**
+	 * Stands in for short lived per-frame objects like projectiles and particles
+	 */
+	static final Pool<Point2D.Float> points = new Pool<>(Point2D.Float::new, 64);
+	static final Point2D.Float[] active = new Point2D.Float[64];
+	
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		
+		ThreadMXBean mx = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!mx.isThreadAllocatedMemorySupported()) {
+			D.p("FAIL thread allocation measurement not supported by this JVM");
+			System.exit(1);
+		}
+		mx.setThreadAllocatedMemoryEnabled(true);
+		
+		Game game = new Game();
+		LayerManager.instance.addLayer(game);
+		game.getBlocks().addAll(MapImporter.load(createMap(), 0, 0));
+		
+		for (int i = 0; i < 5; i++) {
+			Ghost g = new Ghost(1, "ghost" + i);
+			for (int j = 0; j < 10000; j++)
+				g.record(j * 0.05f, i * 20 + (float) Math.sin(j / 10.0) * 10);
+			game.ghosts.add(g);
+		}
+		
+		LayerManager.instance.addLayer(new Minimap(game.getBlocks(), 10, 10, 160, 120));
+		LayerManager.instance.addLayer(new StatsOverlay(10, 140));
+		
+		points.fill(points.getMax());
+		
+		// steady state: nothing gets released while measuring
+		MemoryGovernor.instance.setBudget(Long.MAX_VALUE);
+		
+		Graphics2D g = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB).createGraphics();
+		
+		for (int i = 0; i < WARMUP_FRAMES; i++)
+			frame(g);
+		
+		// best of several rounds, so a one-off allocation by the JIT doesn't count as a regression
+		double best = Double.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; r++) {
+			long before = mx.getCurrentThreadAllocatedBytes();
+			for (int i = 0; i < FRAMES; i++)
+				frame(g);
+			best = Math.min(best, (mx.getCurrentThreadAllocatedBytes() - before) / (double) FRAMES);
+		}
+		
+		boolean ok = best == 0;
+		D.p((ok ? "OK   " : "FAIL ") + best + " bytes/frame with " + game.getBlocks().size() + " blocks, " + game.ghosts.size() + " ghosts, pooled objects, minimap and governor");
+		System.exit(ok ? 0 : 1);
+	}
+	
+	/**
+	 * Same as one iteration of {@link de.dakror.gravityrun.GravityRun#mainLoop()}, minus the buffer strategy.
+	 */
+	static void frame(Graphics2D g) {
+		float deltaTime = 1 / 60f;
+		MemoryGovernor.instance.update(deltaTime);
+		LayerManager.instance.update(deltaTime);
+		
+		for (int i = 0; i < active.length; i++) {
+			active[i] = points.obtain();
+			active[i].setLocation(i, i);
+		}
+		for (int i = 0; i < active.length; i++) {
+			points.free(active[i]);
+			active[i] = null;
+		}
+		
+		g.clearRect(0, 0, 800, 600);
+		LayerManager.instance.draw(g);
+	}
+	
+	/**
+	 * @return an opaque map with varied colors
+	 */
+	static BufferedImage createMap() {
+		BufferedImage map = new BufferedImage(16 * 49, 16 * 17, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < map.getHeight(); y++)
+			for (int x = 0; x < map.getWidth(); x++)
+				map.setRGB(x, y, 0xff000000 | (x * 5 & 0xff) << 16 | (y * 3 & 0xff) << 8 | (x ^ y) & 0xff);
+		
+		return map;
+	}
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.game.tile;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Random;
+
+import de.dakror.gravityrun.util.D;
+import de.dakror.gravityrun.util.Palette;
+
+/**
+ * Draw time of many blocks at several zoom levels, scaling the full batch versus drawing the matching downsampled level.<br>
+ * Run headless with the compiled sources and tests on the classpath: <code>java de.dakror.gravityrun.game.tile.LevelOfDetailBenchmark</code>
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+public class LevelOfDetailBenchmark {
+	public static final int BLOCKS = 600;
+	public static final int ROUNDS = 30;
+	public static final float[] SCALES = { 1 / 16f, 1 / 8f, 1 / 4f, 1 / 2f, 1 };
+	
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		
+		Random random = new Random(1);
+		ArrayList<Block> blocks = new ArrayList<>();
+		for (int n = 0; n < BLOCKS; n++) {
+			Block b = new Block();
+			b.init();
+			for (int i = 0; i < Block.TILE_COUNT; i++)
+				for (int j = 0; j < Block.TILE_COUNT; j++)
+					b.set(i, j, random.nextInt(Palette.instance.size()));
+			b.setX((n % 30) * Block.TILE_COUNT * Block.TILE_SIZE);
+			b.setY((n / 30) * Block.TILE_COUNT * Block.TILE_SIZE);
+			blocks.add(b);
+		}
+		
+		BufferedImage target = new BufferedImage(1024, 768, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = target.createGraphics();
+		
+		for (float scale : SCALES) {
+			double full = measure(g, blocks, scale, false);
+			double lod = measure(g, blocks, scale, true);
+			D.p(String.format("scale %6.4f: full batch %7.2fms, level %7.2fms for %d blocks", scale, full, lod, BLOCKS));
+		}
+		
+		g.dispose();
+	}
+	
+	/**
+	 * @return best time of all rounds in ms
+	 */
+	static double measure(Graphics2D g, ArrayList<Block> blocks, float scale, boolean lod) {
+		int size = (int) (Block.TILE_COUNT * Block.TILE_SIZE * scale);
+		long best = Long.MAX_VALUE;
+		
+		for (int r = 0; r < ROUNDS; r++) {
+			long t = System.nanoTime();
+			for (int i = 0; i < blocks.size(); i++) {
+				Block b = blocks.get(i);
+				BufferedImage img = lod ? b.getBatch(scale) : b.getBatch();
+				g.drawImage(img, (int) (b.getX() * scale) % 1024, (int) (b.getY() * scale) % 768, size, size, null);
+			}
+			best = Math.min(best, System.nanoTime() - t);
+		}
+		
+		return best / 1_000_000.0;
+	}
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.game.tile;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import de.dakror.gravityrun.util.D;
+
+/**
+ * Import time of an 8192x1024 map, on one thread and on the common pool, for the common source image types.<br>
+ * Run headless with the compiled sources and tests on the classpath: <code>java -Xmx2g de.dakror.gravityrun.game.tile.MapImportBenchmark</code>
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+public class MapImportBenchmark {
+	public static final int WIDTH = 8192, HEIGHT = 1024;
+	public static final int ROUNDS = 5;
+	
+	public static void main(String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+		
+		ForkJoinPool single = new ForkJoinPool(1);
+		
+		for (int type : new int[] { BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR }) {
+			BufferedImage map = createMap(type);
+			String name = type == BufferedImage.TYPE_INT_ARGB ? "INT_ARGB" : "4BYTE_ABGR";
+			
+			int blocks = 0;
+			long sequential = Long.MAX_VALUE, parallel = Long.MAX_VALUE;
+			for (int r = 0; r < ROUNDS; r++) {
+				long t = System.nanoTime();
+				// parallel streams run inside the pool of the task that starts them
+				blocks = single.submit(() -> MapImporter.load(map, 0, 0)).get().size();
+				sequential = Math.min(sequential, System.nanoTime() - t);
+				
+				t = System.nanoTime();
+				ArrayList<Block> list = MapImporter.load(map, 0, 0);
+				parallel = Math.min(parallel, System.nanoTime() - t);
+				blocks = list.size();
+			}
+			
+			D.p(String.format("%-10s %dx%d: 1 thread %7.1fms, common pool (%d workers) %7.1fms, %d of %d blocks kept", name, WIDTH, HEIGHT, sequential / 1_000_000.0, ForkJoinPool.getCommonPoolParallelism(), parallel / 1_000_000.0, blocks, (WIDTH / Block.TILE_COUNT) * (HEIGHT / Block.TILE_COUNT)));
+		}
+		
+		single.shutdown();
+	}
+	
+	/**
+	 * @return a map with a third of the blocks fully transparent
+	 */
+	static BufferedImage createMap(int type) {
+		BufferedImage map = new BufferedImage(WIDTH, HEIGHT, type);
+		Random random = new Random(3);
+		
+		int[] row = new int[WIDTH];
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				boolean solid = ((x / 64 + y / 64) % 3) != 0;
+				row[x] = solid ? 0xff000000 | ((x * 7) & 0xff) << 16 | ((y * 3) & 0xff) << 8 | random.nextInt(256) : 0;
+			}
+			map.setRGB(0, y, WIDTH, 1, row, 0, WIDTH);
+		}
+		
+		return map;
+	}
+}
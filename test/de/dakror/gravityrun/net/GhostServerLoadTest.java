@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.DeflaterOutputStream;
+
+import de.dakror.gravityrun.util.D;
+
+/**
+ * Load test for {@link GhostServer} and {@link GhostClient} against an in-process server on localhost.<br>
+ * Run with the compiled sources and tests on the classpath: <code>java de.dakror.gravityrun.net.GhostServerLoadTest</code><br>
+ * Exits with status 1 if any check fails.
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+public class GhostServerLoadTest {
+	public static final int CLIENTS = 1000;
+	
+	/**
+	 * Seconds to wait for each scenario
+	 */
+	public static final int TIMEOUT = 60;
+	
+	static int failures;
+	
+	public static void main(String[] args) throws Exception {
+		startAndClose();
+		stalledServer();
+		
+		GhostServer server = new GhostServer(0).start();
+		
+		try {
+			concurrentClients(server.getPort());
+			pipelinedFetches(server.getPort());
+			oversizedFetch(server.getPort());
+			corruptUpload(server.getPort());
+		} finally {
+			server.close();
+		}
+		
+		D.p(failures == 0 ? "All checks passed" : failures + " check(s) failed");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+	
+	/**
+	 * Closing right after starting must not hang, whether or not the server thread is already running.
+	 */
+	static void startAndClose() throws InterruptedException {
+		Thread t = new Thread(() -> {
+			try {
+				for (int i = 0; i < 200; i++)
+					new GhostServer(0).start().close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+		t.setDaemon(true);
+		t.start();
+		t.join(TIMEOUT * 1000);
+		
+		check(!t.isAlive(), "200 servers closed right after starting");
+	}
+	
+	/**
+	 * A server that accepts the connection but never answers. Requests must time out and give back their permits.
+	 */
+	static void stalledServer() throws IOException, InterruptedException {
+		try (ServerSocketChannel stalled = ServerSocketChannel.open()) {
+			stalled.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			
+			GhostClient c = new GhostClient("localhost", stalled.socket().getLocalPort(), 1000);
+			
+			ArrayList<CompletableFuture<List<Ghost>>> fetches = new ArrayList<>();
+			for (int i = 0; i < GhostClient.MAX_PENDING; i++)
+				fetches.add(c.fetch(1, 10));
+			
+			boolean done = await(new ArrayList<>(fetches));
+			boolean timedOut = done;
+			for (int i = 0; timedOut && i < fetches.size(); i++) {
+				try {
+					fetches.get(i).get();
+					timedOut = false;
+				} catch (ExecutionException e) {
+					timedOut = e.getCause() instanceof TimeoutException;
+				}
+			}
+			
+			check(timedOut, GhostClient.MAX_PENDING + " requests to a stalled server time out");
+			check(c.permits.availablePermits() == GhostClient.MAX_PENDING, "timed out requests give back their permits");
+			
+			CompletableFuture<List<Ghost>> after = c.fetch(1, 10);
+			check(!after.isDone(), "new requests are accepted after the timeouts");
+			
+			c.close();
+		}
+	}
+	
+	/**
+	 * Every client submits a run and fetches the leaderboard of its seed, all at once.
+	 */
+	static void concurrentClients(int port) throws IOException {
+		ArrayList<GhostClient> clients = new ArrayList<>();
+		ArrayList<CompletableFuture<Integer>> ranks = new ArrayList<>();
+		ArrayList<CompletableFuture<List<Ghost>>> fetches = new ArrayList<>();
+		
+		long t = System.nanoTime();
+		for (int i = 0; i < CLIENTS; i++) {
+			GhostClient c = new GhostClient("localhost", port);
+			clients.add(c);
+			
+			ranks.add(c.submit(createGhost(i % 10, "client" + i, 300 + i % 500, null)));
+			fetches.add(c.fetch(i % 10, 10));
+		}
+		
+		ArrayList<CompletableFuture<?>> all = new ArrayList<>(ranks);
+		all.addAll(fetches);
+		boolean done = await(all);
+		double ms = (System.nanoTime() - t) / 1_000_000.0;
+		
+		boolean valid = done;
+		for (int i = 0; valid && i < CLIENTS; i++) {
+			if (ranks.get(i).isCompletedExceptionally() || fetches.get(i).isCompletedExceptionally()) {
+				valid = false;
+				break;
+			}
+			
+			int rank = ranks.get(i).join();
+			valid = (rank == -1 || (rank >= 1 && rank <= GhostServer.MAX_GHOSTS)) && !fetches.get(i).join().isEmpty();
+		}
+		
+		check(valid, CLIENTS + " concurrent clients, " + all.size() + " requests in " + Math.round(ms) + "ms");
+		
+		for (GhostClient c : clients)
+			c.close();
+	}
+	
+	/**
+	 * Large responses pile up past the server's high water mark while more requests are still buffered.
+	 */
+	static void pipelinedFetches(int port) throws IOException {
+		GhostClient c = new GhostClient("localhost", port);
+		Random random = new Random(42);
+		
+		ArrayList<CompletableFuture<?>> submits = new ArrayList<>();
+		for (int i = 0; i < 20; i++)
+			submits.add(c.submit(createGhost(4242, "pipelined" + i, 600 + i, random)));
+		
+		boolean done = await(submits);
+		
+		ArrayList<CompletableFuture<List<Ghost>>> fetches = new ArrayList<>();
+		for (int i = 0; i < 60; i++)
+			fetches.add(c.fetch(4242, 20));
+		
+		done &= await(new ArrayList<>(fetches));
+		
+		boolean complete = done;
+		for (int i = 0; complete && i < fetches.size(); i++)
+			complete = !fetches.get(i).isCompletedExceptionally() && fetches.get(i).join().size() == 20;
+		
+		check(complete, "60 pipelined fetches of 20 ghosts each");
+		
+		c.close();
+	}
+	
+	/**
+	 * Responses are cut off before they exceed the frame limit, instead of breaking the connection.
+	 */
+	static void oversizedFetch(int port) throws IOException {
+		GhostClient c = new GhostClient("localhost", port);
+		Random random = new Random(7);
+		
+		ArrayList<CompletableFuture<?>> submits = new ArrayList<>();
+		for (int i = 0; i < 10; i++)
+			submits.add(c.submit(createGhost(5353, "long" + i, Ghost.MAX_TICKS - i, random)));
+		
+		boolean done = await(submits);
+		
+		CompletableFuture<List<Ghost>> fetch = c.fetch(5353, 10);
+		done &= await(List.of(fetch));
+		
+		int n = done && !fetch.isCompletedExceptionally() ? fetch.join().size() : 0;
+		check(done && n > 0 && n < 10 && c.isRunning(), "fetch exceeding the frame limit returned " + n + " of 10 ghosts");
+		
+		c.close();
+	}
+	
+	/**
+	 * A ghost claiming far more ticks than it contains must be rejected and not end up on the leaderboard.
+	 */
+	static void corruptUpload(int port) throws IOException {
+		GhostClient c = new GhostClient("localhost", port);
+		
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(baos);
+		dos.writeByte(Connection.SUBMIT);
+		dos.writeLong(666);
+		dos.writeInt(Integer.MAX_VALUE - 16);
+		byte[] name = "evil".getBytes(StandardCharsets.UTF_8);
+		dos.writeShort(name.length);
+		dos.write(name);
+		DeflaterOutputStream deflater = new DeflaterOutputStream(dos);
+		deflater.write(new byte[8]);
+		deflater.finish();
+		
+		CompletableFuture<Integer> submit = c.enqueue(ByteBuffer.wrap(baos.toByteArray()), r -> r.getInt());
+		CompletableFuture<List<Ghost>> fetch = c.fetch(666, 10);
+		boolean done = await(List.of(submit, fetch));
+		
+		check(done && submit.isCompletedExceptionally(), "corrupt upload is rejected");
+		check(done && !fetch.isCompletedExceptionally() && fetch.join().isEmpty() && c.isRunning(), "corrupt upload doesn't reach the leaderboard");
+		
+		c.close();
+	}
+	
+	/**
+	 * @param random noise on the positions, so the data doesn't compress away. null for smooth movement
+	 */
+	static Ghost createGhost(long seed, String name, int ticks, Random random) {
+		Ghost g = new Ghost(seed, name);
+		for (int i = 0; i < ticks; i++) {
+			if (random != null) g.record(random.nextFloat() * 10000, random.nextFloat() * 10000);
+			else g.record(i * 2, (float) Math.sin(i / 10.0) * 50);
+		}
+		
+		return g;
+	}
+	
+	/**
+	 * @return false if not all futures completed in time
+	 */
+	static boolean await(List<? extends CompletableFuture<?>> futures) {
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(TIMEOUT, TimeUnit.SECONDS);
+		} catch (Exception e) {
+			// failed futures are checked by the caller, only timeouts count here
+		}
+		
+		for (CompletableFuture<?> f : futures)
+			if (!f.isDone()) return false;
+		
+		return true;
+	}
+	
+	static void check(boolean ok, String message) {
+		D.p((ok ? "OK   " : "FAIL ") + message);
+		if (!ok) failures++;
+	}
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2015 Maximilian Stark | Dakror <mail@dakror.de>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.gravityrun.util;
+
+/**
+ * Checks for {@link Pool}.<br>
+ * Run with the compiled sources and tests on the classpath: <code>java de.dakror.gravityrun.util.PoolTest</code><br>
+ * Exits with status 1 if any check fails.
+ * 
+ * @author Maximilian Stark | Dakror
+ */
+public class PoolTest {
+	static class Particle implements Pool.Poolable {
+		static int created;
+		
+		float x, y;
+		
+		Particle() {
+			created++;
+		}
+		
+		@Override
+		public void reset() {
+			x = y = 0;
+		}
+	}
+	
+	static int failures;
+	
+	public static void main(String[] args) {
+		Pool<Particle> pool = new Pool<>(Particle::new, 4);
+		
+		Particle a = pool.obtain();
+		check(a != null && Particle.created == 1 && pool.getFree() == 0, "obtain on an empty pool creates a new object");
+		
+		a.x = 5;
+		a.y = 7;
+		pool.free(a);
+		check(pool.getFree() == 1 && a.x == 0 && a.y == 0, "free resets Poolables and keeps them");
+		
+		check(pool.obtain() == a && pool.getFree() == 0 && Particle.created == 1, "obtain hands out freed objects first");
+		
+		pool.free(a);
+		boolean rejected = false;
+		try {
+			pool.free(a);
+		} catch (IllegalArgumentException e) {
+			rejected = true;
+		}
+		check(rejected && pool.getFree() == 1, "double free is rejected");
+		check(pool.obtain() == a && pool.obtain() != a, "a double freed object is only handed out once");
+		
+		rejected = false;
+		try {
+			pool.free(null);
+		} catch (IllegalArgumentException e) {
+			rejected = true;
+		}
+		check(rejected, "freeing null is rejected");
+		
+		pool.fill(10);
+		check(pool.getFree() == pool.getMax(), "fill stops at the maximum");
+		
+		int created = Particle.created;
+		pool.free(new Particle());
+		check(pool.getFree() == pool.getMax() && Particle.created == created + 1, "objects beyond the maximum are dropped");
+		
+		for (int i = 0; i < pool.getMax(); i++)
+			pool.obtain();
+		check(pool.getFree() == 0 && Particle.created == created + 1, "filled objects are handed out without creating new ones");
+		
+		D.p(failures == 0 ? "All checks passed" : failures + " check(s) failed");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+	
+	static void check(boolean ok, String message) {
+		D.p((ok ? "OK   " : "FAIL ") + message);
+		if (!ok) failures++;
+	}
+}